@@ -8,17 +8,34 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 
 /**
@@ -28,61 +45,299 @@ public class distanceVector {
     private int serverId;
     private String serverIp;
     private int serverPort;
-    private int updateInterval;
+    private int updateInterval;     // minimum interval, also the fixed one when not adaptive
+    private int maxUpdateInterval;  // adaptive mode backs off up to this interval
+    private int currentInterval;
+    private boolean routesChanged = true;
     private DatagramSocket serverSocket;
+    private DatagramChannel serverChannel; // used instead of serverSocket when run by a routerHost
+    private Executor routerExecutor; // the one thread that touches routing state, see runOnRouter
     private Map<Integer, ServerInfo> serverInfo; // stores all server information
+    private Map<String, Integer> serverIdByAddress; // "ip:port" -> server ID, to identify senders
     private Map<Integer, Integer> neighbors;     // stores neighbor costs
     private int numServers;
     private int numNeighbors;
     private Timer updateTimer;
+    private TimerTask nextUpdate;
     private AtomicInteger packetsReceived = new AtomicInteger(0);
+    // receive side metrics, never reset by the packets command, read with a STATS message
+    private AtomicLong packetsTotal = new AtomicLong(0);
+    private AtomicLong vectorsProcessed = new AtomicLong(0);
+    private AtomicLong processingNanosTotal = new AtomicLong(0);
+    private AtomicLong processingNanosMax = new AtomicLong(0);
     private Map<Integer, Long> lastUpdateTime = new HashMap<>(); // track last update time from each neighbor
-    private Map<Integer, Integer> routingTable = new HashMap<>(); // destination -> cost
-    private Map<Integer, Integer> nextHopTable = new HashMap<>(); // destination -> next Hop
+    private Map<Integer, Integer> neighborIntervals = new HashMap<>(); // update interval each neighbor advertises
+    private Set<Integer> downNeighbors = new HashSet<>(); // neighbors that timed out, until heard from again
+
+    // largest UDP payload, the most one datagram of a vector can carry
+    static final int MAX_PACKET_SIZE = 65507;
+    // header is 8 bytes, every entry is 12 bytes
+    // larger vectors are split across datagrams, each one repeating the self entry
+    static final int MAX_VECTOR_ENTRIES = (MAX_PACKET_SIZE - 8) / 12;
+    // server IDs and ports travel as unsigned 16 bit fields
+    static final int MAX_SERVER_ID = 0xFFFF;
+    // below this many routes splitting the work costs more than it saves
+    private static final int SHARD_THRESHOLD = 1024;
+    // one shard per core when run alone, each shard owns every NUM_SHARDS-th block of destination IDs
+    private static final int NUM_SHARDS = Runtime.getRuntime().availableProcessors();
+    // destination IDs kept together in one shard, so shards working side by side don't share cache lines
+    private static final int SHARD_BLOCK = 64;
+    private static ExecutorService shardPool;
+    // next hop of a destination never heard of
+    private static final int NO_ROUTE = -1;
+    // packets waiting for the router thread, past this many the listener drops them like a full socket buffer
+    private static final int MAX_QUEUED_PACKETS = 1024;
+    private AtomicInteger queuedPackets = new AtomicInteger();
+    private AtomicLong packetsShed = new AtomicLong(); // received packets dropped because the router thread fell behind
+    private AtomicLong packetsDropped = new AtomicLong(); // sends refused because the socket buffer was full
+    private RouteShard[] shards; // the routing table, split by destination ID
+    private int tableSize;        // largest server ID the tables hold + 1, IDs index the tables directly
+    private int[] neighborSlot;   // server ID -> slot of that neighbor's vector, -1 if not a neighbor
+    private int[] slotNeighbor = new int[0]; // slot -> neighbor ID
+    private BitSet changedRoutes = new BitSet(); // destinations changed since the last update went out
+    // route changes within this long of each other go out in one triggered update
+    private static final int TRIGGER_DELAY_MILLIS = 1000;
+    private boolean triggeredUpdatePending = false; // only read and written on the router thread
 
     // store server information
     public static class ServerInfo{
         String ip;
         int port;
+        final byte[] address; // IP as 4 bytes, looked up once when the topology is loaded
 
-        ServerInfo(String ip, int port){
+        ServerInfo(String ip, int port) throws UnknownHostException {
             this.ip = ip;
             this.port = port;
+            this.address = InetAddress.getByName(ip).getAddress();
+        }
+    }
+
+    /**
+     * the part of the routing table for the destination IDs one shard owns, with the cost each
+     * neighbor last advertised for them. only the router thread, or the one shard worker it
+     * is waiting on, touches a shard, so no locks are needed
+     */
+    private class RouteShard {
+        final int index;      // owns the destinations with (destId / SHARD_BLOCK) % shards == index
+        final int[] cost;     // local index -> cost
+        final int[] nextHop;  // local index -> next Hop, NO_ROUTE if never heard of
+        short[][] advertised = new short[0][]; // neighbor slot -> local index -> cost it sent, null until it sends one
+        int[] changed = new int[16]; // destinations changed by the last apply or recomputeVia
+        int changedCount;
+
+        RouteShard(int index) {
+            this.index = index;
+            int stride = SHARD_BLOCK * shards.length;
+            int size = (tableSize + stride - 1) / stride * SHARD_BLOCK;
+            cost = new int[size];
+            nextHop = new int[size];
+            Arrays.fill(cost, Integer.MAX_VALUE);
+            Arrays.fill(nextHop, NO_ROUTE);
+        }
+
+        boolean owns(int destId) {
+            return destId < tableSize && (destId / SHARD_BLOCK) % shards.length == index;
+        }
+
+        // position of an owned destination in this shard's arrays
+        int localIndex(int destId) {
+            return destId / (SHARD_BLOCK * shards.length) * SHARD_BLOCK + destId % SHARD_BLOCK;
+        }
+
+        int destinationAt(int i) {
+            return (i / SHARD_BLOCK * shards.length + index) * SHARD_BLOCK + i % SHARD_BLOCK;
+        }
+
+        // * 8 BELLMAN-FORD: apply the entries of one neighbor's vector that this shard owns
+        void apply(int slot, int[] destIds, int[] costs, int count, int[] linkCosts) {
+            changedCount = 0;
+            short[] vector = advertised[slot];
+            if (vector == null) {
+                vector = new short[cost.length];
+                Arrays.fill(vector, (short) -1); // infinity until advertised
+                advertised[slot] = vector;
+            }
+            int viaNode = slotNeighbor[slot];
+            for (int k = 0; k < count; k++) {
+                int destId = destIds[k];
+                if (!owns(destId) || destId == serverId) continue; // we are always 0 away from ourselves
+                int i = localIndex(destId);
+                short received = (short) costs[k];
+                // most of a periodic vector repeats the last one, link cost changes are handled by recomputeVia
+                if (vector[i] == received) continue;
+                vector[i] = received;
+
+                if (nextHop[i] == viaNode) {
+                    // our current next hop is always believed, even when its cost went up or to
+                    // infinity, then every other neighbor's last vector is checked for something better
+                    recompute(i, linkCosts);
+                } else {
+                    // total cost = (our cost to reach neighbor) + (neighbor's cost to reach destination)
+                    int newCost = pathCost(linkCosts[slot], received);
+                    if (newCost < cost[i]) {
+                        cost[i] = newCost;
+                        nextHop[i] = viaNode;
+                        markChanged(destId);
+                    }
+                }
+            }
+        }
+
+        // recompute every route a change to this neighbor's link can affect
+        void recomputeVia(int slot, boolean forgetVector, int[] linkCosts) {
+            changedCount = 0;
+            int neighbor = slotNeighbor[slot];
+            short[] vector = advertised[slot];
+            if (forgetVector) {
+                advertised[slot] = null;
+            }
+            for (int i = 0; i < cost.length; i++) {
+                if (nextHop[i] == neighbor || destinationAt(i) == neighbor || (vector != null && vector[i] >= 0)) {
+                    recompute(i, linkCosts);
+                }
+            }
+        }
+
+        // best route to the destination at i from the direct link and every neighbor's last vector
+        private void recompute(int i, int[] linkCosts) {
+            int destId = destinationAt(i);
+            if (destId == serverId || destId >= tableSize) return;
+            int currentHop = nextHop[i];
+            int bestCost = Integer.MAX_VALUE;
+            int bestHop = currentHop; // an unreachable destination keeps its last next hop
+
+            if (neighborSlot[destId] != -1) {
+                bestCost = linkCosts[neighborSlot[destId]];
+                bestHop = destId;
+            }
+            for (int slot = 0; slot < advertised.length; slot++) {
+                short[] vector = advertised[slot];
+                if (vector == null) continue;
+                int viaNode = slotNeighbor[slot];
+                int pathCost = pathCost(linkCosts[slot], vector[i]);
+                // on a tie keep the current next hop so routes don't flap
+                if (pathCost < bestCost || (pathCost == bestCost && pathCost != Integer.MAX_VALUE
+                        && viaNode == currentHop)) {
+                    bestCost = pathCost;
+                    bestHop = viaNode;
+                }
+            }
+            if (bestHop == NO_ROUTE) return; // never heard of this destination
+            if (cost[i] == bestCost && currentHop == bestHop) return;
+
+            cost[i] = bestCost;
+            nextHop[i] = bestHop;
+            markChanged(destId);
+        }
+
+        private void markChanged(int destId) {
+            if (changedCount == changed.length) {
+                changed = Arrays.copyOf(changed, changedCount * 2);
+            }
+            changed[changedCount++] = destId;
         }
     }
 
     // initialize periodic updates in constructor after loading topology
-    private void initializePeriodicUpdates() {
-        updateTimer = new Timer(true);
+    private void initializePeriodicUpdates(long initialDelayMillis) {
+        if (updateTimer == null) {
+            updateTimer = new Timer(true);
+        }
+        currentInterval = updateInterval;
+        scheduleNextUpdate(initialDelayMillis);
+
+        // liveness is checked at the minimum interval even while updates are backed off
+        // offset like the first update, so hosted servers don't all check at the same moment
         updateTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
-                sendDistanceVectorUpdates();
-                checkNeighborTimeout();
+                routerExecutor.execute(() -> checkNeighborTimeout());
             }
-        }, 0, updateInterval * 1000);
+        }, initialDelayMillis + updateInterval * 1000L, updateInterval * 1000L);
+    }
+
+    // replace the pending periodic update with one that runs after delayMillis
+    private void scheduleNextUpdate(long delayMillis) {
+        if (nextUpdate != null) {
+            nextUpdate.cancel();
+        }
+        nextUpdate = new TimerTask() {
+            @Override
+            public void run() {
+                routerExecutor.execute(() -> periodicUpdate());
+            }
+        };
+        updateTimer.schedule(nextUpdate, delayMillis);
+    }
+
+    // runs on the router thread like markRoutesChanged, so no change can land while this runs
+    private void periodicUpdate() {
+        // double the interval while the table stays stable, up to the maximum
+        // when not adaptive the maximum equals the minimum so this never changes
+        if (routesChanged) {
+            currentInterval = updateInterval;
+        } else {
+            currentInterval = Math.min(currentInterval * 2, maxUpdateInterval);
+        }
+        routesChanged = false;
+
+        // the update advertises currentInterval, so compute it before sending
+        sendDistanceVectorUpdates();
+        scheduleNextUpdate(currentInterval * 1000L);
+    }
+
+    // send an update soon, every change until then is carried by the same update
+    private void scheduleTriggeredUpdate() {
+        if (triggeredUpdatePending) return;
+        triggeredUpdatePending = true;
+        updateTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                routerExecutor.execute(() -> {
+                    triggeredUpdatePending = false;
+                    sendChangedRoutes();
+                });
+            }
+        }, TRIGGER_DELAY_MILLIS);
+    }
+
+    // record a routing change, drops back to the minimum interval right away
+    private void markRoutesChanged() {
+        routesChanged = true;
+        if (currentInterval > updateInterval) {
+            currentInterval = updateInterval;
+            scheduleNextUpdate(updateInterval * 1000L);
+        }
     }
 
     private void checkNeighborTimeout() {
         // System.out.println("Checking neighbor timeouts");
         // get current time to be compare with the last update times
         long currentTime = System.currentTimeMillis();
-        long timeout = updateInterval * 3000; // 3 intervals in milliseconds
         
         // check each known neighbor
         for (int neighborId : neighbors.keySet()) {
              // get last time we received an update from this neighbor
              Long lastUpdate = lastUpdateTime.get(neighborId);
 
+             // 3 of the intervals this neighbor advertised, in milliseconds
+             // neighbors that don't advertise one are assumed to use ours
+             long timeout = neighborIntervals.getOrDefault(neighborId, updateInterval) * 3000L;
+
              // if we have record of last update AND time since last update exceeds timeout
             if (lastUpdate != null && currentTime - lastUpdate > timeout) {
-                System.out.println("Server " + neighborId + " timed out. Last update: " + 
+                System.out.println("Server " + serverId + ": Server " + neighborId + " timed out. Last update: " + 
                 (currentTime - lastUpdate)/1000 + " seconds ago");
-                 // mark neighbor as unreachable by setting cost to infinity
-                routingTable.put(neighborId, Integer.MAX_VALUE);
-                // notify other neighbors about this change by sending routing updates
+                // report each timeout once, the next update from this neighbor records it again
+                lastUpdateTime.remove(neighborId);
+                 // mark neighbor as unreachable, then move every route through it to the
+                 // best alternative the other neighbors' last vectors offer
+                downNeighbors.add(neighborId);
+                recomputeRoutesVia(neighborId, true);
+                markRoutesChanged();
+                // notify other neighbors about the routes that changed
                 // they may be using this now-unreachable neighbor as part of their paths
-                sendDistanceVectorUpdates();
+                sendChangedRoutes();
             }
         }
     }
@@ -90,9 +345,25 @@ public class distanceVector {
    
     // Send updates to all neighbors
     private void sendDistanceVectorUpdates() {
+        sendDistanceVectorUpdates(knownDestinations());
+    }
+
+    // send only the routes changed since the last update, as merged from every shard
+    // receivers apply a vector entry by entry, so routes left out keep their last cost
+    private void sendChangedRoutes() {
+        if (!changedRoutes.isEmpty()) {
+            sendDistanceVectorUpdates(changedRoutes.stream().toArray());
+        }
+    }
+
+    // send the routes to these destinations, plus our own entry, to all neighbors
+    private void sendDistanceVectorUpdates(int[] destinations) {
+        changedRoutes.clear(); // every change so far is carried by this update
         try {
             // System.out.println("Sending updates to neighbors: " + neighbors);
-            byte[] updateMessage = createUpdateMessage(); // create message once
+            // create message once, with the position of every cost field grouped by that route's next hop
+            Map<Integer, List<int[]>> costOffsets = new HashMap<>();
+            List<byte[]> updateMessage = createUpdateMessage(destinations, costOffsets);
             
             // send same message to each neighbor
             for (Map.Entry<Integer, Integer> neighbor : neighbors.entrySet()) {
@@ -101,13 +372,10 @@ public class distanceVector {
                 ServerInfo neighborInfo = serverInfo.get(neighborId);
                 
                 if (neighborInfo != null) {
-                    DatagramPacket packet = new DatagramPacket(
-                        updateMessage,
-                        updateMessage.length,
-                        InetAddress.getByName(neighborInfo.ip),
-                        neighborInfo.port
-                    );
-                    serverSocket.send(packet);
+                    InetAddress neighborAddress = InetAddress.getByName(neighborInfo.ip);
+                    for (byte[] datagram : poisonReverse(updateMessage, costOffsets.get(neighborId))) {
+                        sendPacket(datagram, neighborAddress, neighborInfo.port);
+                    }
                 }
             }
             // System.out.println("Updates sent successfully");
@@ -116,58 +384,177 @@ public class distanceVector {
         }
     }
 
-    // create the update message in specified format
-    private byte[] createUpdateMessage() throws IOException {
-        // using ByteBuffer library to create byte arrays
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        
-        // number of update fields (including self)
-        dos.writeShort(routingTable.size() + 1);
-        
-        // server port
-        dos.writeShort(serverPort);
-        
-        // server IP (4 bytes)
+    // split horizon with poisoned reverse: routes learned through a neighbor are advertised
+    // back to it as infinity, so two servers can't keep a dead route alive through each other
+    // positions are {datagram, offset}, only the datagrams that change are copied
+    private static List<byte[]> poisonReverse(List<byte[]> updateMessage, List<int[]> positions) {
+        if (positions == null) {
+            return updateMessage;
+        }
+        List<byte[]> poisoned = new ArrayList<>(updateMessage);
+        for (int[] position : positions) {
+            byte[] datagram = poisoned.get(position[0]);
+            if (datagram == updateMessage.get(position[0])) {
+                datagram = Arrays.copyOf(datagram, datagram.length);
+                poisoned.set(position[0], datagram);
+            }
+            datagram[position[1]] = (byte) 0xFF;     // infinity, read back as cost -1
+            datagram[position[1] + 1] = (byte) 0xFF;
+        }
+        return poisoned;
+    }
+
+    // send one datagram from this server's port
+    private void sendPacket(byte[] data, InetAddress address, int port) throws IOException {
+        if (serverChannel != null) {
+            // a non-blocking channel sends nothing and returns 0 when the socket buffer is full
+            if (serverChannel.send(ByteBuffer.wrap(data), new InetSocketAddress(address, port)) == 0) {
+                long dropped = packetsDropped.incrementAndGet();
+                // first drop and then every 100th, a full buffer would otherwise flood the log
+                if (dropped == 1 || dropped % 100 == 0) {
+                    System.err.println("Server " + serverId + ": send buffer full, dropped datagram to "
+                        + address.getHostAddress() + ":" + port + " (" + dropped + " dropped so far)");
+                }
+            }
+        } else {
+            serverSocket.send(new DatagramPacket(data, data.length, address, port));
+        }
+    }
+
+    // create the update message in specified format, one datagram per MAX_VECTOR_ENTRIES entries
+    // costOffsets is filled with next hop -> {datagram, offset} of the cost fields of routes through it
+    private List<byte[]> createUpdateMessage(int[] destinations, Map<Integer, List<int[]>> costOffsets) throws IOException {
+        List<byte[]> datagrams = new ArrayList<>();
         byte[] ipBytes = InetAddress.getByName(serverIp).getAddress();
-        dos.write(ipBytes);
-        
-        // add entry for self
-        dos.write(ipBytes);  // server IP
-        dos.writeShort(serverPort);  // server port
-        dos.writeShort(0);  // padding
-        dos.writeShort(serverId);  // sserver ID
-        dos.writeShort(0);  // cost to self = 0
+        int remaining = destinations.length;
+        ByteBuffer buffer = null;
+        int count = 0;
         
-        // add entries for all destinations
-        for (Map.Entry<Integer, Integer> entry : routingTable.entrySet()) {
-            int destId = entry.getKey();
+        // add entries for the destinations
+        for (int destId : destinations) {
             if (destId != serverId) { // skip self as it's already added
                 ServerInfo destInfo = serverInfo.get(destId);
                 if (destInfo != null) {
-                    dos.write(InetAddress.getByName(destInfo.ip).getAddress());
-                    dos.writeShort(destInfo.port);
-                    dos.writeShort(0);  // padding
-                    dos.writeShort(destId);
-                    dos.writeShort(entry.getValue());
+                    // start the next datagram once this one is full
+                    if (buffer == null || count == MAX_VECTOR_ENTRIES) {
+                        if (buffer != null) {
+                            datagrams.add(finishDatagram(buffer, count));
+                        }
+                        buffer = startDatagram(ipBytes, Math.min(remaining, MAX_VECTOR_ENTRIES - 1));
+                        count = 1;
+                    }
+                    RouteShard shard = shardFor(destId);
+                    buffer.put(destInfo.address);
+                    buffer.putShort((short) destInfo.port);
+                    buffer.putShort((short) 0);  // padding
+                    buffer.putShort((short) destId);
+                    costOffsets.computeIfAbsent(shard.nextHop[shard.localIndex(destId)], k -> new ArrayList<>())
+                        .add(new int[] { datagrams.size(), buffer.position() });
+                    // costs that don't fit in 16 bits are sent as infinity
+                    int cost = shard.cost[shard.localIndex(destId)];
+                    buffer.putShort((short) (cost > Short.MAX_VALUE ? -1 : cost));
+                    count++;
                 }
             }
+            remaining--;
+        }
+        
+        // with no other routes the message is just the self entry
+        if (buffer == null) {
+            buffer = startDatagram(ipBytes, 0);
+            count = 1;
         }
+        datagrams.add(finishDatagram(buffer, count));
+        return datagrams;
+
+    }
+
+    // header and self entry of one update datagram, with room for entries more
+    private ByteBuffer startDatagram(byte[] ipBytes, int entries) {
+        // sized for the whole datagram so it is never copied while growing
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 12 * (entries + 1));
         
-        return baos.toByteArray();
+        // number of update fields (including self), filled in once they are counted
+        buffer.putShort((short) 0);
+        
+        // server port
+        buffer.putShort((short) serverPort);
+        
+        // server IP (4 bytes)
+        buffer.put(ipBytes);
+        
+        // add entry for self
+        buffer.put(ipBytes);  // server IP
+        buffer.putShort((short) serverPort);  // server port
+        buffer.putShort((short) currentInterval);  // padding, carries our update interval in seconds
+        buffer.putShort((short) serverId);  // sserver ID
+        buffer.putShort((short) 0);  // cost to self = 0
+        return buffer;
+    }
 
+    private static byte[] finishDatagram(ByteBuffer buffer, int count) {
+        buffer.putShort(0, (short) count);
+        return Arrays.copyOf(buffer.array(), buffer.position());
     }
 
     // constructor
     public distanceVector(String topologyFile, int updateInterval) {
+        this(topologyFile, updateInterval, updateInterval);
+    }
+
+    // constructor for adaptive mode, the interval backs off from updateInterval to maxUpdateInterval
+    public distanceVector(String topologyFile, int updateInterval, int maxUpdateInterval) {
         this.updateInterval = updateInterval;
+        this.maxUpdateInterval = maxUpdateInterval;
         this.serverInfo = new HashMap<>();
         this.neighbors = new HashMap<>();
 
         // load topology first to get server informations
+        routerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread router = new Thread(runnable, "router");
+            router.setDaemon(true);
+            return router;
+        });
         loadTopology(topologyFile);
+        serverIdByAddress = indexByAddress(serverInfo);
         initializeServer();
-        initializePeriodicUpdates();
+        initializePeriodicUpdates(0);
+    }
+
+    // constructor for a server run by a routerHost, which owns the topology, the bound
+    // channel, the shared timer and the event loop this server's work runs on
+    // serverInfo and serverIdByAddress are shared by every hosted server and only read
+    distanceVector(int serverId, Map<Integer, ServerInfo> serverInfo, Map<String, Integer> serverIdByAddress,
+                   Map<Integer, Integer> neighbors, int updateInterval, int maxUpdateInterval,
+                   DatagramChannel serverChannel, Timer sharedTimer, Executor routerExecutor,
+                   long initialDelayMillis) {
+        this.serverId = serverId;
+        this.serverIp = serverInfo.get(serverId).ip;
+        this.serverPort = serverInfo.get(serverId).port;
+        this.serverInfo = serverInfo;
+        this.serverIdByAddress = serverIdByAddress;
+        this.neighbors = neighbors;
+        this.numServers = serverInfo.size();
+        this.numNeighbors = neighbors.size();
+        this.updateInterval = updateInterval;
+        this.maxUpdateInterval = maxUpdateInterval;
+        this.serverChannel = serverChannel;
+        this.updateTimer = sharedTimer;
+        this.routerExecutor = routerExecutor;
+
+        // the host's event loops already keep every core busy, so a hosted server keeps
+        // its whole table in one shard and never waits on the shard pool
+        initializeRoutingTable(1, Collections.max(serverInfo.keySet()) + 1);
+        initializePeriodicUpdates(initialDelayMillis);
+    }
+
+    // build the sender lookup used when a vector arrives
+    static Map<String, Integer> indexByAddress(Map<Integer, ServerInfo> serverInfo) {
+        Map<String, Integer> index = new HashMap<>();
+        for (Map.Entry<Integer, ServerInfo> entry : serverInfo.entrySet()) {
+            index.put(entry.getValue().ip + ":" + entry.getValue().port, entry.getKey());
+        }
+        return index;
     }
 
     // converts IPs for generateUpdatePacket
@@ -227,6 +614,9 @@ public class distanceVector {
                 int id = Integer.parseInt(parts[0]);
                 String ip = parts[1];
                 int port = Integer.parseInt(parts[2]);
+                if (id < 0 || id > MAX_SERVER_ID) {
+                    throw new IOException("Server ID " + id + " does not fit in 16 bits");
+                }
                 
                 // store server information
                 serverInfo.put(id, new ServerInfo(ip, port));
@@ -253,13 +643,8 @@ public class distanceVector {
             }
             
             // * 4 INITIALIZE ROUTING TABLE (after loading topology)
-            for (Map.Entry<Integer, Integer> entry : neighbors.entrySet()) {
-                routingTable.put(entry.getKey(), entry.getValue());
-                nextHopTable.put(entry.getKey(), entry.getKey());
-            }
-            // add self with cost 0
-            routingTable.put(serverId, 0);
-            nextHopTable.put(serverId, serverId);
+            // any 16 bit ID is held, vectors may carry destinations the topology doesn't list
+            initializeRoutingTable(NUM_SHARDS, MAX_SERVER_ID + 1);
             
             System.out.println("Topology loaded successfully");
             
@@ -270,8 +655,101 @@ public class distanceVector {
     }
     
 
+    // direct links first, then self with cost 0
+    private void initializeRoutingTable(int numShards, int tableSize) {
+        this.tableSize = tableSize;
+        shards = new RouteShard[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            shards[shard] = new RouteShard(shard);
+        }
+        neighborSlot = new int[tableSize];
+        Arrays.fill(neighborSlot, -1);
+
+        for (Map.Entry<Integer, Integer> entry : neighbors.entrySet()) {
+            int neighborId = entry.getKey();
+            slotFor(neighborId);
+            RouteShard shard = shardFor(neighborId);
+            shard.cost[shard.localIndex(neighborId)] = entry.getValue();
+            shard.nextHop[shard.localIndex(neighborId)] = neighborId;
+        }
+        // add self with cost 0
+        RouteShard self = shardFor(serverId);
+        self.cost[self.localIndex(serverId)] = 0;
+        self.nextHop[self.localIndex(serverId)] = serverId;
+    }
+
+    private RouteShard shardFor(int destId) {
+        return shards[(destId / SHARD_BLOCK) % shards.length];
+    }
+
+    // slot holding this neighbor's vector in every shard, added the first time it is a neighbor
+    private int slotFor(int neighborId) {
+        if (neighborSlot[neighborId] == -1) {
+            int slot = slotNeighbor.length;
+            slotNeighbor = Arrays.copyOf(slotNeighbor, slot + 1);
+            slotNeighbor[slot] = neighborId;
+            neighborSlot[neighborId] = slot;
+            for (RouteShard shard : shards) {
+                shard.advertised = Arrays.copyOf(shard.advertised, slot + 1);
+            }
+        }
+        return neighborSlot[neighborId];
+    }
+
+    // link cost of every neighbor slot, read once per batch so the shards don't touch the maps
+    private int[] linkCosts() {
+        int[] linkCosts = new int[slotNeighbor.length];
+        for (int slot = 0; slot < linkCosts.length; slot++) {
+            linkCosts[slot] = linkCost(slotNeighbor[slot]);
+        }
+        return linkCosts;
+    }
+
+    // every destination in the table, in ID order
+    private int[] knownDestinations() {
+        int count = 0;
+        int[] destinations = new int[tableSize];
+        for (int destId = 0; destId < tableSize; destId++) {
+            RouteShard shard = shardFor(destId);
+            if (shard.nextHop[shard.localIndex(destId)] != NO_ROUTE) {
+                destinations[count++] = destId;
+            }
+        }
+        return Arrays.copyOf(destinations, count);
+    }
+
+    // destination -> cost over every shard, sorted by destination
+    private Map<Integer, Integer> routingTableSnapshot() {
+        Map<Integer, Integer> snapshot = new TreeMap<>();
+        for (int destId : knownDestinations()) {
+            RouteShard shard = shardFor(destId);
+            snapshot.put(destId, shard.cost[shard.localIndex(destId)]);
+        }
+        return snapshot;
+    }
+
+    // cost of the direct link to a neighbor, infinity while it is timed out or disabled
+    private int linkCost(int neighborId) {
+        if (downNeighbors.contains(neighborId)) return Integer.MAX_VALUE;
+        return neighbors.getOrDefault(neighborId, Integer.MAX_VALUE);
+    }
+
+    // run a task on the router thread and wait for it, for callers outside that thread
+    // like the command line, so routing state is never touched by two threads at once
+    void runOnRouter(Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        routerExecutor.execute(future);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error running command: " + e.getCause().getMessage());
+        }
+    }
+
     private void listenForMessages() {
-        byte[] receiveBuffer = new byte[1024];
+        byte[] receiveBuffer = new byte[MAX_PACKET_SIZE];
         DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
     
         while (true) {
@@ -279,57 +757,32 @@ public class distanceVector {
                 // Clear the buffer before each receive
                 Arrays.fill(receiveBuffer, (byte) 0);
                 
-                // Receive packet
+                // Receive packet, then hand a copy to the router thread
                 serverSocket.receive(receivePacket);
-                packetsReceived.incrementAndGet();
-    
-                // First try to process as a binary distance vector update
-                ByteBuffer buffer = ByteBuffer.wrap(receivePacket.getData(), 0, receivePacket.getLength());
-                
-                // Read header fields
-                short numUpdates = buffer.getShort();
-                short senderPort = buffer.getShort();
-                
-                // If these values make sense (non-negative and reasonable size)
-                if (numUpdates >= 0 && numUpdates < 100 && senderPort > 0) {
-                    byte[] ipBytes = new byte[4];
-                    buffer.get(ipBytes);
-                    InetAddress senderIP = InetAddress.getByAddress(ipBytes);
-    
-                    // Find sender ID
-                    int senderId = -1;
-                    for (Map.Entry<Integer, ServerInfo> entry : serverInfo.entrySet()) {
-                        ServerInfo info = entry.getValue();
-                        if (info.port == senderPort && 
-                            info.ip.equals(senderIP.getHostAddress())) {
-                            senderId = entry.getKey();
-                            break;
-                        }
-                    }
-                
-                    if (senderId != -1) {
-                        // System.out.println("RECEIVED A MESSAGE FROM SERVER " + senderId);
-                        lastUpdateTime.put(senderId, System.currentTimeMillis());
-                        
-                        // Process updates
-                        for (int i = 0; i < numUpdates && buffer.remaining() >= 12; i++) {
-                            buffer.get(ipBytes);
-                            short destPort = buffer.getShort();
-                            buffer.getShort(); // Skip padding
-                            short destId = buffer.getShort();
-                            short cost = buffer.getShort();
-    
-                            updateRoutingTable(senderId, destId, cost);
-                        }
-            
-                    }
-                } else {
-                    // Try to process as text UPDATE message
-                    String message = new String(receivePacket.getData(), 0, receivePacket.getLength(), StandardCharsets.UTF_8).trim();
-                    if (message.startsWith("UPDATE")) {
-                        processUpdateMessage(message);
+                long receivedAt = System.nanoTime();
+                // the router thread has fallen behind, drop instead of queueing without limit
+                // timer and command line work is never dropped, only packets count against the limit
+                if (queuedPackets.incrementAndGet() > MAX_QUEUED_PACKETS) {
+                    queuedPackets.decrementAndGet();
+                    long shed = packetsShed.incrementAndGet();
+                    // first drop and then every 100th, a backlog would otherwise flood the log too
+                    if (shed == 1 || shed % 100 == 0) {
+                        System.err.println("Server " + serverId + ": router thread behind, dropped received packet ("
+                            + shed + " dropped so far)");
                     }
+                    continue;
                 }
+                byte[] data = Arrays.copyOf(receivePacket.getData(), receivePacket.getLength());
+                InetAddress fromAddress = receivePacket.getAddress();
+                int fromPort = receivePacket.getPort();
+                routerExecutor.execute(() -> {
+                    queuedPackets.decrementAndGet();
+                    try {
+                        handlePacket(data, data.length, fromAddress, fromPort, receivedAt);
+                    } catch (Exception e) {
+                        System.err.println("Error processing packet: " + e.getMessage());
+                    }
+                });
             } catch (Exception e) {
                 // Just log the error and continue listening
                 System.err.println("Error processing packet: " + e.getMessage());
@@ -337,6 +790,71 @@ public class distanceVector {
             }
         }
     }
+
+    /* HANDLE ONE RECEIVED DATAGRAM */
+    // runs on the router thread, or a routerHost event loop
+    // receivedAt is System.nanoTime() when the datagram was taken off the socket
+    void handlePacket(byte[] data, int length, InetAddress fromAddress, int fromPort, long receivedAt) throws IOException {
+        packetsReceived.incrementAndGet();
+        packetsTotal.incrementAndGet();
+
+        // First try to process as a binary distance vector update
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        
+        // Read header fields, both unsigned
+        int numUpdates = buffer.getShort() & 0xFFFF;
+        int senderPort = buffer.getShort() & 0xFFFF;
+        
+        // If these values make sense (fits in one datagram, text messages start too high)
+        if (numUpdates <= MAX_VECTOR_ENTRIES && senderPort > 0) {
+            byte[] ipBytes = new byte[4];
+            buffer.get(ipBytes);
+            InetAddress senderIP = InetAddress.getByAddress(ipBytes);
+    
+            // Find sender ID
+            Integer knownSender = serverIdByAddress.get(senderIP.getHostAddress() + ":" + senderPort);
+            int senderId = knownSender != null ? knownSender : -1;
+        
+            if (senderId != -1) {
+                // System.out.println("RECEIVED A MESSAGE FROM SERVER " + senderId);
+                lastUpdateTime.put(senderId, System.currentTimeMillis());
+                downNeighbors.remove(senderId);
+                
+                // Collect the vector entries, then apply them as one batch
+                int[] destIds = new int[numUpdates];
+                int[] costs = new int[numUpdates];
+                int count = 0;
+                for (int i = 0; i < numUpdates && buffer.remaining() >= 12; i++) {
+                    buffer.get(ipBytes);
+                    short destPort = buffer.getShort();
+                    int padding = buffer.getShort() & 0xFFFF;
+                    destIds[count] = buffer.getShort() & 0xFFFF;
+                    costs[count] = buffer.getShort();
+                    // the sender's own entry carries its update interval in the padding
+                    if (destIds[count] == senderId && padding > 0) {
+                        neighborIntervals.put(senderId, padding);
+                    }
+                    count++;
+                }
+                applyDistanceVector(senderId, destIds, costs, count);
+
+                // time from receive() returning until the vector is applied, including the wait for the router thread
+                long elapsed = System.nanoTime() - receivedAt;
+                vectorsProcessed.incrementAndGet();
+                processingNanosTotal.addAndGet(elapsed);
+                processingNanosMax.accumulateAndGet(elapsed, Math::max);
+            }
+        } else {
+            // Try to process as text UPDATE message
+            String message = new String(data, 0, length, StandardCharsets.UTF_8).trim();
+            if (message.startsWith("UPDATE")) {
+                processUpdateMessage(message);
+            } else if (message.equals("STATS")) {
+                sendStats(fromAddress, fromPort);
+            }
+        }
+    }
+
     /* HELPER FUNCTION TO CHECK IF THE MESSAGE IS TO UPDATE A ROUTING TABLE */
     private void processUpdateMessage(String message) {
         try {
@@ -349,16 +867,15 @@ public class distanceVector {
             // Ensure the message is for this server
             if (targetId == serverId) {
                 System.out.println("Received UPDATE message from server " + sourceId);
+                if (sourceId < 0 || sourceId >= tableSize) {
+                    System.out.println("Unknown server " + sourceId + ". Ignoring message.");
+                    return;
+                }
     
-                // Update routing table and next hop
+                // Update link cost, then every route it can affect
                 neighbors.put(sourceId, newCost);
-                if (newCost == Integer.MAX_VALUE) {
-                    routingTable.put(sourceId, Integer.MAX_VALUE); // Mark as unreachable
-                    nextHopTable.remove(sourceId); // Remove from next hop table
-                } else {
-                    routingTable.put(sourceId, newCost); // Update cost
-                    nextHopTable.put(sourceId, sourceId); // Direct link
-                }
+                recomputeRoutesVia(sourceId, newCost == Integer.MAX_VALUE);
+                markRoutesChanged();
     
                 System.out.println("Routing table updated for link to server " + sourceId);
             }
@@ -367,6 +884,22 @@ public class distanceVector {
         }
     }
 
+    /* HELPER FUNCTION TO REPLY TO A STATS REQUEST */
+    // reply format: STATS <packets> <vectors processed> <total processing ns> <max processing ns>
+    // the max is reset on every request so each reply covers the time since the last one
+    private void sendStats(InetAddress address, int port) {
+        try {
+            String reply = "STATS " + packetsTotal.get()
+                + " " + vectorsProcessed.get()
+                + " " + processingNanosTotal.get()
+                + " " + processingNanosMax.getAndSet(0);
+            byte[] replyBytes = reply.getBytes(StandardCharsets.UTF_8);
+            sendPacket(replyBytes, address, port);
+        } catch (IOException e) {
+            System.err.println("Error sending stats: " + e.getMessage());
+        }
+    }
+
     /* HELPER FUNCTION TO PARSE DISTANCE VECTOR UPDATES */
     private void processDistanceVectorUpdate(ByteBuffer buffer, DatagramPacket receivePacket) {
         try {
@@ -403,50 +936,91 @@ public class distanceVector {
                 short cost = buffer.getShort();     // Cost
     
                 // Apply Bellman-Ford algorithm to update routing table
-                updateRoutingTable(senderId, destId, cost);
+                applyDistanceVector(senderId, new int[] { destId }, new int[] { cost }, 1);
             }
         } catch (Exception e) {
             System.err.println("Error processing distance vector update: " + e.getMessage());
         }
     }
 
-                // * 8 BELLMAN-FORD: Update routing if better path found
-                private void updateRoutingTable(int viaNode, int destNode, int receivedCost) {
-                    // get the cost to reach the neighbor (viaNode) from our routing table
-                    // viaNode: the server that sent us the update
-                    Integer costToVia = neighbors.get(viaNode);
-                    
-                    // if this node isn't our neighbor, ignore the update
-                    // this prevents updates from non-neighboring nodes
-                    if (costToVia == null) return;
-                    
-                    // calculate total cost to reach destNode through viaNode
-                    // total cost = (our cost to reach neighbor) + (neighbor's cost to reach destination)
-                    int newCost = costToVia + receivedCost;  
-                    
-                    // get our current known cost to reach destNode
-                    Integer currentCost = routingTable.get(destNode);
-                    
-                    // if we never seen this destination before, set current cost to infinity
-                    // this ensures first path to new destination is always accepted
-                    if (currentCost == null) currentCost = Integer.MAX_VALUE;
-                    
-                    // System.out.println("Route update - via: " + viaNode + 
-                    // ", to: " + destNode + 
-                    // ", cost: " + receivedCost);
-                    // Bellman-Ford - if new path is cheaper than current path
-                    if (newCost < currentCost) {
-                        // System.out.println("Route improved - New cost: " + newCost + 
-                        //   " (previous: " + currentCost + ")");
-
-                        // update routing table with new, lower cost to destination
-                        routingTable.put(destNode, newCost);
-                        
-                        // update next hop table to route through viaNode to reach destNode
-                        // this records that to reach destNode, we should forward to viaNode
-                        nextHopTable.put(destNode, viaNode);
-                    }
-                 }
+    // cost of going through a neighbor, infinity stays infinity instead of overflowing
+    private static int pathCost(int costToVia, int receivedCost) {
+        if (costToVia == Integer.MAX_VALUE || receivedCost < 0 || receivedCost == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        long total = (long) costToVia + receivedCost;
+        return total >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) total;
+    }
+
+    /* APPLY A WHOLE DISTANCE VECTOR FROM ONE NEIGHBOR */
+    // every shard applies the entries it owns to its own part of the table, the destinations
+    // they changed are merged and go out together in one triggered update
+    private void applyDistanceVector(int viaNode, int[] destIds, int[] costs, int count) {
+        // if this node isn't our neighbor, ignore the update
+        if (!neighbors.containsKey(viaNode)) return;
+
+        int slot = slotFor(viaNode);
+        int[] linkCosts = linkCosts();
+        if (runOnShards(shard -> shard.apply(slot, destIds, costs, count, linkCosts), count) > 0) {
+            markRoutesChanged();
+            scheduleTriggeredUpdate();
+        }
+    }
+
+    /* RECOMPUTE EVERY ROUTE A NEIGHBOR'S LINK CHANGE CAN AFFECT */
+    // used when a neighbor times out, is disabled, or its link cost changes
+    // forgetVector drops what the neighbor advertised, it sends a fresh vector when it comes back
+    private void recomputeRoutesVia(int neighborId, boolean forgetVector) {
+        int slot = slotFor(neighborId);
+        int[] linkCosts = linkCosts();
+        runOnShards(shard -> shard.recomputeVia(slot, forgetVector, linkCosts), tableSize);
+    }
+
+    // run task once per shard, on the shard workers when there is enough work to split
+    // the router thread waits for all of them, then merges the destinations each one changed
+    // returns how many routes changed
+    private int runOnShards(Consumer<RouteShard> task, int work) {
+        if (work < SHARD_THRESHOLD || shards.length < 2) {
+            for (RouteShard shard : shards) {
+                task.accept(shard);
+            }
+        } else {
+            List<Future<?>> results = new ArrayList<>(shards.length);
+            for (RouteShard shard : shards) {
+                results.add(shardPool().submit(() -> task.accept(shard)));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.err.println("Error computing routes: " + e.getCause().getMessage());
+                }
+            }
+        }
+
+        int changed = 0;
+        for (RouteShard shard : shards) {
+            for (int i = 0; i < shard.changedCount; i++) {
+                changedRoutes.set(shard.changed[i]);
+            }
+            changed += shard.changedCount;
+        }
+        return changed;
+    }
+
+    // worker threads shared by every shard computation, created on first use
+    private static synchronized ExecutorService shardPool() {
+        if (shardPool == null) {
+            shardPool = Executors.newFixedThreadPool(NUM_SHARDS, runnable -> {
+                Thread worker = new Thread(runnable, "route-shard");
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+        return shardPool;
+    }
     
 
     private void start() {
@@ -478,7 +1052,7 @@ public class distanceVector {
                                 int linkCost = parts[3].equalsIgnoreCase("inf") 
                        ? Integer.MAX_VALUE 
                        : Integer.parseInt(parts[3]);
-                       handleUpdateCommand(serverId1, serverId2, linkCost);
+                       runOnRouter(() -> handleUpdateCommand(serverId1, serverId2, linkCost));
                             }catch(NumberFormatException e){
                                 System.out.println("Invalid input. Link cost must be a number or 'inf'.");
                             }
@@ -487,7 +1061,7 @@ public class distanceVector {
                         case "step": // force immediate updates
                         System.out.println("Sending routing update to neighbors....");
                         // Manually trigger updates by passing periodic updates
-                        sendDistanceVectorUpdates(); 
+                        runOnRouter(() -> sendDistanceVectorUpdates());
                         System.out.println("Routing update sent.");
                             break;
                         case "packets": // show received packet count
@@ -495,7 +1069,7 @@ public class distanceVector {
                             packetsReceived.set(0); // Reset the counter
                             break;
                         case "display": // disable specific link
-                            displayRoutingTable();
+                            runOnRouter(() -> displayRoutingTable());
                             break;
                         case "disable": // simulate server crash
                             if (parts.length != 2) {
@@ -503,11 +1077,11 @@ public class distanceVector {
                                 break;
                             }
                             int disableServerId = Integer.parseInt(parts[1]);
-                            handleDisable(disableServerId);
+                            runOnRouter(() -> handleDisable(disableServerId));
                             break;
                            
                         case "crash":  // simulate server crash
-                            handleCrash();
+                            runOnRouter(() -> handleCrash());
                             break;
                         default: // unknown command
                             System.out.println("Unknown command. Here's the list of commands");
@@ -539,14 +1113,15 @@ public class distanceVector {
         }
     
         // * IF ITS A NEIGHBOR, DISABLE THE LINK
-        // Set cost in routing table to infinity (unreachable)
-        routingTable.put(disableServerId, Integer.MAX_VALUE);
-
         // keep neighbor but set cost to infinity
         // this maintains record of neighbor but marks link as unusable
         neighbors.put(disableServerId, Integer.MAX_VALUE);  
+        // move every route through it to the best alternative
+        recomputeRoutesVia(disableServerId, true);
+        markRoutesChanged();
+        scheduleTriggeredUpdate();
 
-        System.out.println("Updated routing table: " + routingTable);
+        System.out.println("Updated routing table: " + routingTableSnapshot());
         System.out.println("Updated neighbors: " + neighbors);
         
         System.out.println("disable SUCCESS");
@@ -556,8 +1131,8 @@ public class distanceVector {
         System.out.println("Initiating server crash");
         // set all link costs to infinity for neighbors to detect
         for (int neighborId : neighbors.keySet()) {
-            routingTable.put(neighborId, Integer.MAX_VALUE);
             neighbors.put(neighborId, Integer.MAX_VALUE);
+            recomputeRoutesVia(neighborId, true);
         }
         
         // close the socket to simulate crash
@@ -565,7 +1140,7 @@ public class distanceVector {
             serverSocket.close();
         }
         
-        System.out.println("Final routing table: " + routingTable);
+        System.out.println("Final routing table: " + routingTableSnapshot());
         System.out.println("crash SUCCESS");
         System.exit(0); 
     }
@@ -585,19 +1160,28 @@ public class distanceVector {
     }
 
 
+    // datagrams dropped because the send buffer was full, never reset
+    long droppedCount() {
+        return packetsDropped.get();
+    }
+
+    // packets received since the last check, resets the counter like the packets command
+    int takePacketCount() {
+        return packetsReceived.getAndSet(0);
+    }
+
     /* DISPLAY THE CURRENT ROUTING TABLE */
-    private void displayRoutingTable() {
+    void displayRoutingTable() {
         System.out.println("Routing Table:");
         System.out.println("Destination | Next Hop | Cost");
 
-        //retrieve all destination keys
-        routingTable.keySet().stream()
-            //sort by smallest to biggest id
-            .sorted()
-            //for each destination key get the next hop and it's cost
+        //retrieve all destinations, already sorted by smallest to biggest id
+        Arrays.stream(knownDestinations())
+            //for each destination get the next hop and it's cost
             .forEach(dest -> {
-                int nextHop = nextHopTable.get(dest);
-                int cost = routingTable.get(dest);
+                RouteShard shard = shardFor(dest);
+                int nextHop = shard.nextHop[shard.localIndex(dest)];
+                int cost = shard.cost[shard.localIndex(dest)];
                 System.out.printf("%11d | %8d | %4d%n", dest, nextHop, cost);
             });
     }
@@ -622,13 +1206,12 @@ public class distanceVector {
         neighbors.put(serverId2, linkCost);
         if (linkCost == Integer.MAX_VALUE) {
             System.out.println("Disabling link to server " + serverId2 + ".");
-            routingTable.put(serverId2, Integer.MAX_VALUE); // Mark as unreachable
-            nextHopTable.remove(serverId2); // Remove from next hop table
         } else {
             System.out.println("Updating link cost to server " + serverId2 + " to " + linkCost + ".");
-            routingTable.put(serverId2, linkCost); // Update cost
-            nextHopTable.put(serverId2, serverId2); // Direct link
         }
+        // every route through server-ID2 may change with its link cost
+        recomputeRoutesVia(serverId2, linkCost == Integer.MAX_VALUE);
+        markRoutesChanged();
     
         // Notify server-ID2 to update its routing table
         sendDirectUpdateToServer(serverId2, serverId1, linkCost);
@@ -649,13 +1232,7 @@ public class distanceVector {
                 byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
     
                 // Send the message to targetServerId
-                DatagramPacket packet = new DatagramPacket(
-                    messageBytes,
-                    messageBytes.length,
-                    InetAddress.getByName(targetServerInfo.ip),
-                    targetServerInfo.port
-                );
-                serverSocket.send(packet);
+                sendPacket(messageBytes, InetAddress.getByName(targetServerInfo.ip), targetServerInfo.port);
                 System.out.println("Sent update command to server " + targetServerId);
             }
         } catch (IOException e) {
@@ -669,13 +1246,15 @@ public class distanceVector {
 
     public static void main(String[] args) {
         // * Validate command line arguments:
-        // - must have exactly 4 arguments
+        // - must have 4 arguments, or 6 with the adaptive flag
         // - first argument must be "-t" (topology file flag)
         // - third argument must be "-i" (interval flag)
+        // - fifth argument, if present, must be "-a" (adaptive maximum interval flag)
 
         // check if we have the correct number of arguments
-        // we need exactly 4 args: -t, topology filename, -i, and update interval
-        if (args.length != 4) {
+        // we need 4 args: -t, topology filename, -i, and update interval
+        // plus -a and maximum interval for adaptive mode
+        if (args.length != 4 && args.length != 6) {
             System.err.println("Error: Incorrect number of arguments");
             printUsage();
             System.exit(1);
@@ -715,10 +1294,32 @@ public class distanceVector {
             System.exit(1);
             return;
         }
+
+        // parse and validate the adaptive maximum interval
+        // must be at least the update interval and fit in the 16 bit field it is advertised in
+        int maxUpdateInterval = updateInterval;
+        if (args.length == 6) {
+            if (!args[4].equals("-a")) {
+                System.err.println("Error: Fifth argument must be -a");
+                printUsage();
+                System.exit(1);
+            }
+            try {
+                maxUpdateInterval = Integer.parseInt(args[5]);
+                if (maxUpdateInterval < updateInterval || maxUpdateInterval > 0xFFFF) {
+                    throw new NumberFormatException("Maximum interval out of range");
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Error: Invalid maximum interval - must be between the update interval and 65535");
+                printUsage();
+                System.exit(1);
+                return;
+            }
+        }
     
         // initialize and start the server
         try {
-            distanceVector server = new distanceVector(topologyFile, updateInterval);
+            distanceVector server = new distanceVector(topologyFile, updateInterval, maxUpdateInterval);
             server.start();
         } catch (Exception e) {
             System.err.println("Error starting server: " + e.getMessage());
@@ -727,10 +1328,12 @@ public class distanceVector {
     }
     
     private static void printUsage() {
-        System.out.println("Usage: server -t <topology-file-name> -i <routing-update-interval>");
+        System.out.println("Usage: server -t <topology-file-name> -i <routing-update-interval> [-a <max-update-interval>]");
         System.out.println("  -t : topology file flag");
         System.out.println("  <topology-file-name> : name of the file containing network topology");
         System.out.println("  -i : update interval flag");
         System.out.println("  <routing-update-interval> : time between routing table updates in seconds");
+        System.out.println("  -a : adaptive interval flag (optional)");
+        System.out.println("  <max-update-interval> : while routes are stable the interval doubles up to this many seconds");
     }
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+package distanceVectorRouting;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * load generator that pretends to be every neighbor of a distanceVector router
+ * and steps up the offered vector rate until the router stops keeping up
+ */
+public class loadGenerator {
+    // one send per interval is timed in nanoseconds, faster rates would give an interval of 0
+    private static final int MAX_RATE = 1_000_000_000;
+    // a step is sustained while the router processes at least this share of what was sent
+    private static final double KEEP_UP_RATIO = 0.95;
+    // time for packets still in flight to be processed before reading the stats
+    private static final int DRAIN_MILLIS = 200;
+
+    private int targetId;
+    private String targetIp;
+    private int targetPort;
+    private List<Integer> neighborIds = new ArrayList<>();
+    private List<String> neighborIps = new ArrayList<>();
+    private List<Integer> neighborPorts = new ArrayList<>();
+    private int firstSyntheticId; // synthetic destinations are numbered after every topology server
+
+    private int tableSize;
+    private double churn;
+    private Random random = new Random();
+    private DatagramSocket socket;
+    private InetAddress targetAddress;
+
+    // one prebuilt vector per neighbor, costs are rewritten in place for churn
+    private List<ByteBuffer> vectors = new ArrayList<>();
+
+    public loadGenerator(String topologyFile, int tableSize, double churn) throws IOException {
+        this.tableSize = tableSize;
+        this.churn = churn;
+        loadTopology(topologyFile);
+
+        if (neighborIds.isEmpty()) {
+            throw new IOException("Target server " + targetId + " has no neighbors in the topology");
+        }
+        if (firstSyntheticId + tableSize - 1 > distanceVector.MAX_SERVER_ID) {
+            throw new IOException("Table size too large for 16 bit server IDs");
+        }
+
+        targetAddress = InetAddress.getByName(targetIp);
+        socket = new DatagramSocket();
+        socket.setSoTimeout(2000);
+        for (int i = 0; i < neighborIds.size(); i++) {
+            vectors.add(buildVector(i));
+        }
+    }
+
+    // the target is the first server listed, the same server the router takes as itself
+    private void loadTopology(String filename) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            int numServers = Integer.parseInt(reader.readLine().trim());
+            int numNeighbors = Integer.parseInt(reader.readLine().trim());
+
+            String[] ips = new String[numServers];
+            int[] ids = new int[numServers];
+            int[] ports = new int[numServers];
+            int maxId = 0;
+            for (int i = 0; i < numServers; i++) {
+                String[] parts = reader.readLine().trim().split(" ");
+                ids[i] = Integer.parseInt(parts[0]);
+                ips[i] = parts[1];
+                ports[i] = Integer.parseInt(parts[2]);
+                maxId = Math.max(maxId, ids[i]);
+            }
+            targetId = ids[0];
+            targetIp = ips[0];
+            targetPort = ports[0];
+            firstSyntheticId = maxId + 1;
+
+            // the router only accepts vectors from servers it lists as neighbors
+            for (int i = 0; i < numNeighbors; i++) {
+                String[] parts = reader.readLine().trim().split(" ");
+                int server1 = Integer.parseInt(parts[0]);
+                int server2 = Integer.parseInt(parts[1]);
+                if (server1 != targetId) continue;
+                for (int j = 0; j < numServers; j++) {
+                    if (ids[j] == server2) {
+                        neighborIds.add(ids[j]);
+                        neighborIps.add(ips[j]);
+                        neighborPorts.add(ports[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    // build a vector in the router's binary format, sent as if it came from neighbor index n
+    private ByteBuffer buildVector(int n) throws IOException {
+        byte[] neighborIp = InetAddress.getByName(neighborIps.get(n)).getAddress();
+        byte[] syntheticIp = InetAddress.getByName("127.0.0.1").getAddress();
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 12 * (tableSize + 1));
+
+        // header: number of entries, sender port, sender IP
+        buffer.putShort((short) (tableSize + 1));
+        buffer.putShort(neighborPorts.get(n).shortValue());
+        buffer.put(neighborIp);
+
+        // entry for the neighbor itself
+        buffer.put(neighborIp);
+        buffer.putShort(neighborPorts.get(n).shortValue());
+        buffer.putShort((short) 0);
+        buffer.putShort(neighborIds.get(n).shortValue());
+        buffer.putShort((short) 0);
+
+        // synthetic destinations
+        for (int i = 0; i < tableSize; i++) {
+            buffer.put(syntheticIp);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) (firstSyntheticId + i));
+            buffer.putShort((short) (1 + random.nextInt(100)));
+        }
+        return buffer;
+    }
+
+    // change the cost of a churn share of the synthetic entries
+    private void applyChurn(ByteBuffer buffer) {
+        int changes = (int) Math.round(tableSize * churn);
+        for (int c = 0; c < changes; c++) {
+            int entry = 1 + random.nextInt(tableSize);
+            buffer.putShort(8 + entry * 12 + 10, (short) (1 + random.nextInt(100)));
+        }
+    }
+
+    // ask the router for its receive metrics: packets, vectors, total ns, max ns
+    private long[] queryStats() throws IOException {
+        byte[] request = "STATS".getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(request, request.length, targetAddress, targetPort));
+
+        byte[] replyBuffer = new byte[256];
+        DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+        while (true) {
+            try {
+                socket.receive(reply);
+            } catch (SocketTimeoutException e) {
+                throw new IOException("No STATS reply from server " + targetId + " on port " + targetPort);
+            }
+            String message = new String(reply.getData(), 0, reply.getLength(), StandardCharsets.UTF_8).trim();
+            String[] parts = message.split(" ");
+            if (parts.length == 5 && parts[0].equals("STATS")) {
+                long[] stats = new long[4];
+                for (int i = 0; i < 4; i++) {
+                    stats[i] = Long.parseLong(parts[i + 1]);
+                }
+                return stats;
+            }
+        }
+    }
+
+    // send vectors round robin across the neighbors at rate per second
+    // returns {vectors sent, nanoseconds it took}, which can be longer than asked if we fall behind
+    private long[] sendAtRate(int rate, int seconds) throws IOException {
+        long intervalNanos = 1_000_000_000L / rate;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextSend = start;
+        long sent = 0;
+        int n = 0;
+
+        while (nextSend < end) {
+            long wait = nextSend - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ByteBuffer vector = vectors.get(n);
+            if (churn > 0) {
+                applyChurn(vector);
+            }
+            socket.send(new DatagramPacket(vector.array(), vector.capacity(), targetAddress, targetPort));
+            sent++;
+            n = (n + 1) % vectors.size();
+            nextSend += intervalNanos;
+        }
+        return new long[] { sent, System.nanoTime() - start };
+    }
+
+    // double the target rate each step until the router falls behind or the next step would pass maxRate
+    // rates are reported as actually achieved, the generator itself may not reach the target
+    private void run(int startRate, int maxRate, int stepSeconds) throws IOException {
+        System.out.println("Target server " + targetId + " at " + targetIp + ":" + targetPort
+            + ", " + neighborIds.size() + " neighbors, " + tableSize + " entries per vector, churn " + churn);
+        System.out.println("  Target/s |   Sent/s |     Sent | Processed | Processed/s | Avg us | Max us");
+
+        double lastSustained = 0;
+        for (int rate = startRate; ; rate *= 2) {
+            long[] before = queryStats();
+            long[] sendResult = sendAtRate(rate, stepSeconds);
+            long sent = sendResult[0];
+            double seconds = sendResult[1] / 1e9;
+            double sentRate = sent / seconds;
+            try {
+                Thread.sleep(DRAIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long[] after = queryStats();
+
+            long processed = after[1] - before[1];
+            double avgMicros = processed > 0 ? (after[2] - before[2]) / 1000.0 / processed : 0;
+            double maxMicros = after[3] / 1000.0;
+            System.out.printf("%10d | %8.0f | %8d | %9d | %11.1f | %6.1f | %6.1f%n",
+                rate, sentRate, sent, processed, processed / seconds, avgMicros, maxMicros);
+
+            if (processed < sent * KEEP_UP_RATIO) {
+                System.out.printf("Server %d stopped keeping up at %.0f vectors/s (processed %d of %d)%n",
+                    targetId, sentRate, processed, sent);
+                System.out.println("Last sustained rate: "
+                    + (lastSustained > 0 ? String.format("%.0f vectors/s", lastSustained) : "none"));
+                return;
+            }
+            lastSustained = sentRate;
+
+            if (sentRate < rate * KEEP_UP_RATIO) {
+                System.out.printf("Generator reached only %.0f of %d vectors/s, stopping before the router was saturated%n",
+                    sentRate, rate);
+                break;
+            }
+            // stop before the next doubling passes maxRate, this also keeps rate from overflowing
+            if (rate > maxRate / 2) {
+                break;
+            }
+        }
+        System.out.printf("Server %d kept up with every step, last sustained rate: %.0f vectors/s%n",
+            targetId, lastSustained);
+    }
+
+    public static void main(String[] args) {
+        String topologyFile = null;
+        int startRate = 100;
+        int maxRate = 1_000_000;
+        int tableSize = 100;
+        double churn = 0.1;
+        int stepSeconds = 5;
+
+        // flags come in pairs, only -t is required
+        if (args.length % 2 != 0) {
+            printUsage();
+            System.exit(1);
+        }
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "-t": topologyFile = args[i + 1]; break;
+                    case "-r": startRate = Integer.parseInt(args[i + 1]); break;
+                    case "-m": maxRate = Integer.parseInt(args[i + 1]); break;
+                    case "-s": tableSize = Integer.parseInt(args[i + 1]); break;
+                    case "-c": churn = Double.parseDouble(args[i + 1]); break;
+                    case "-d": stepSeconds = Integer.parseInt(args[i + 1]); break;
+                    default:
+                        System.err.println("Error: Unknown flag " + args[i]);
+                        printUsage();
+                        System.exit(1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number - " + e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        if (topologyFile == null) {
+            System.err.println("Error: -t is required");
+            printUsage();
+            System.exit(1);
+        }
+        if (startRate <= 0 || maxRate < startRate || maxRate > MAX_RATE || stepSeconds <= 0) {
+            System.err.println("Error: Rates and step length must be positive, and -m at least -r and at most " + MAX_RATE);
+            printUsage();
+            System.exit(1);
+        }
+        // one vector per datagram, with the router's limits
+        if (tableSize < 0 || tableSize > distanceVector.MAX_VECTOR_ENTRIES - 1) {
+            System.err.println("Error: Table size must be between 0 and " + (distanceVector.MAX_VECTOR_ENTRIES - 1));
+            printUsage();
+            System.exit(1);
+        }
+        if (churn < 0 || churn > 1) {
+            System.err.println("Error: Churn must be between 0 and 1");
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            loadGenerator generator = new loadGenerator(topologyFile, tableSize, churn);
+            generator.run(startRate, maxRate, stepSeconds);
+        } catch (IOException e) {
+            System.err.println("Load generator error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: loadGenerator -t <topology-file-name> [-r <start-rate>] [-m <max-rate>] [-s <table-size>] [-c <churn>] [-d <step-seconds>]");
+        System.out.println("  -t : topology file of the target router, the first server listed is the target");
+        System.out.println("  -r : vectors per second offered in the first step (default 100)");
+        System.out.println("  -m : highest target rate to try, the rate doubles every step (default 1000000, at most 1000000000)");
+        System.out.println("  -s : synthetic destinations in every vector (default 100)");
+        System.out.println("  -c : share of entries whose cost changes between sends, 0 to 1 (default 0.1)");
+        System.out.println("  -d : seconds spent at each rate (default 5)");
+    }
+}
@@ -0,0 +1,358 @@
+package distanceVectorRouting;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Timer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+
+/**
+ * runs many distanceVector servers in one JVM, every server keeps its own tables and
+ * UDP port while a few event loop threads and one timer are shared by all of them
+ */
+public class routerHost {
+    // datagrams read from one server before moving to the next, so a busy port can't starve the rest
+    private static final int READ_BUDGET = 64;
+
+    private int updateInterval;
+    private int maxUpdateInterval;
+    private Map<Integer, distanceVector.ServerInfo> serverInfo = new HashMap<>(); // every server in the topology
+    private Map<Integer, Map<Integer, Integer>> hostedNeighbors = new TreeMap<>(); // hosted server -> neighbor costs
+    private Map<Integer, distanceVector> routers = new TreeMap<>();
+    private List<EventLoop> loops = new ArrayList<>();
+    private Timer sharedTimer = new Timer("router-timer", true);
+
+    /**
+     * event loop shared by a group of servers, reads their channels and runs their timer work
+     * so each server's tables are only touched by this loop's thread
+     */
+    static class EventLoop implements Executor, Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocate(distanceVector.MAX_PACKET_SIZE);
+        private final Thread thread;
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "router-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        // must be called before start
+        void register(DatagramChannel channel, distanceVector router) throws IOException {
+            channel.register(selector, SelectionKey.OP_READ, router);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        readPackets((DatagramChannel) key.channel(), (distanceVector) key.attachment());
+                    }
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (Exception e) {
+                            System.err.println("Error in router task: " + e.getMessage());
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Event loop error: " + e.getMessage());
+                }
+            }
+        }
+
+        private void readPackets(DatagramChannel channel, distanceVector router) {
+            for (int i = 0; i < READ_BUDGET; i++) {
+                try {
+                    receiveBuffer.clear();
+                    InetSocketAddress from = (InetSocketAddress) channel.receive(receiveBuffer);
+                    if (from == null) {
+                        return; // nothing left on this channel
+                    }
+                    router.handlePacket(receiveBuffer.array(), receiveBuffer.position(),
+                        from.getAddress(), from.getPort(), System.nanoTime());
+                } catch (Exception e) {
+                    // Just log the error and keep serving the other servers
+                    System.err.println("Error processing packet: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public routerHost(String topologyFile, int updateInterval, int maxUpdateInterval, int numLoops) throws IOException {
+        this.updateInterval = updateInterval;
+        this.maxUpdateInterval = maxUpdateInterval;
+        loadTopology(topologyFile);
+        for (int i = 0; i < numLoops; i++) {
+            loops.add(new EventLoop(i));
+        }
+        startRouters();
+    }
+
+    // the topology lists the whole network, every server whose IP is local to this host is run here
+    // links are listed once and apply to both ends
+    private void loadTopology(String filename) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            int numServers = Integer.parseInt(reader.readLine().trim());
+            int numLinks = Integer.parseInt(reader.readLine().trim());
+
+            for (int i = 0; i < numServers; i++) {
+                String[] parts = reader.readLine().trim().split(" ");
+                int id = Integer.parseInt(parts[0]);
+                String ip = parts[1];
+                int port = Integer.parseInt(parts[2]);
+                // IDs travel as unsigned 16 bit fields, vectors of any size are split across datagrams
+                if (id < 0 || id > distanceVector.MAX_SERVER_ID) {
+                    throw new IOException("Server ID " + id + " does not fit in 16 bits");
+                }
+                // the address bytes are resolved here, every hosted server shares these objects
+                serverInfo.put(id, new distanceVector.ServerInfo(ip, port));
+                if (isLocalAddress(ip)) {
+                    hostedNeighbors.put(id, new HashMap<>());
+                }
+            }
+
+            for (int i = 0; i < numLinks; i++) {
+                String[] parts = reader.readLine().trim().split(" ");
+                int server1 = Integer.parseInt(parts[0]);
+                int server2 = Integer.parseInt(parts[1]);
+                int cost = Integer.parseInt(parts[2]);
+                if (hostedNeighbors.containsKey(server1)) {
+                    hostedNeighbors.get(server1).put(server2, cost);
+                }
+                if (hostedNeighbors.containsKey(server2)) {
+                    hostedNeighbors.get(server2).put(server1, cost);
+                }
+            }
+        }
+        System.out.println("Topology loaded: " + serverInfo.size() + " servers, "
+            + hostedNeighbors.size() + " on this host");
+    }
+
+    private static boolean isLocalAddress(String ip) {
+        try {
+            InetAddress address = InetAddress.getByName(ip);
+            return address.isLoopbackAddress() || address.isAnyLocalAddress()
+                || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // bind every hosted server's port and spread the servers across the event loops
+    private void startRouters() {
+        Map<String, Integer> serverIdByAddress = distanceVector.indexByAddress(serverInfo);
+        Random random = new Random();
+        int next = 0;
+
+        for (Map.Entry<Integer, Map<Integer, Integer>> entry : hostedNeighbors.entrySet()) {
+            int id = entry.getKey();
+            distanceVector.ServerInfo info = serverInfo.get(id);
+            DatagramChannel channel = null;
+            try {
+                channel = DatagramChannel.open();
+                channel.bind(new InetSocketAddress(info.ip, info.port));
+                channel.configureBlocking(false);
+
+                EventLoop loop = loops.get(next % loops.size());
+                // first updates are spread over one interval instead of all going out at once
+                long initialDelay = random.nextInt(updateInterval * 1000);
+                distanceVector router = new distanceVector(id, serverInfo, serverIdByAddress, entry.getValue(),
+                    updateInterval, maxUpdateInterval, channel, sharedTimer, loop, initialDelay);
+                loop.register(channel, router);
+                routers.put(id, router);
+                next++;
+            } catch (IOException e) {
+                // usually the port is taken, or the open file limit (ulimit -n) is reached
+                System.err.println("Failed to start server " + id + " on port " + info.port + ": " + e.getMessage());
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException closeError) {
+                        // nothing else to clean up
+                    }
+                }
+            }
+        }
+
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+        System.out.println("Started " + routers.size() + " servers on " + loops.size() + " event loops");
+    }
+
+    private void start() {
+        try (Scanner scanner = new Scanner(System.in)) {
+            while (true) {
+                System.out.print("Enter command >> ");
+                if (!scanner.hasNextLine()) {
+                    // no console, keep serving until the process is killed
+                    waitForever();
+                    return;
+                }
+                String[] parts = scanner.nextLine().trim().split(" ");
+                switch (parts[0].toLowerCase()) {
+                    case "help":
+                        displayHelp();
+                        break;
+                    case "list": // hosted server IDs
+                        System.out.println("Hosted servers (" + routers.size() + "): " + routers.keySet());
+                        break;
+                    case "display": // routing table of one hosted server
+                        if (parts.length != 2) {
+                            System.out.println("Usage: display <server ID>");
+                            break;
+                        }
+                        try {
+                            distanceVector router = routers.get(Integer.parseInt(parts[1]));
+                            if (router == null) {
+                                System.out.println("Server " + parts[1] + " is not hosted here");
+                            } else {
+                                // the table belongs to the server's event loop, wait for it to print there
+                                router.runOnRouter(router::displayRoutingTable);
+                            }
+                        } catch (NumberFormatException e) {
+                            System.out.println("Invalid server ID");
+                        }
+                        break;
+                    case "packets": // packets received by all hosted servers since last check
+                        long total = 0;
+                        long dropped = 0;
+                        for (distanceVector router : routers.values()) {
+                            total += router.takePacketCount();
+                            dropped += router.droppedCount();
+                        }
+                        System.out.println("Packets received since last check: " + total);
+                        System.out.println("Datagrams dropped on send (total): " + dropped);
+                        break;
+                    case "exit":
+                        System.exit(0);
+                        break;
+                    default:
+                        System.out.println("Unknown command. Here's the list of commands");
+                        displayHelp();
+                        break;
+                }
+            }
+        }
+    }
+
+    private void waitForever() {
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void displayHelp() {
+        System.out.println("Information about built in commands: \n\n");
+        System.out.println("\thelp: Displays information about the available user interface options or manual.\n");
+        System.out.println("\tlist: Display the IDs of every server running on this host.\n");
+        System.out.println("\tdisplay <server-ID>: Display the current routing table of one hosted server.\n");
+        System.out.println("\tpackets: Display the number of distance vector packets all hosted servers have received since the last invocation of this information, and how many datagrams were dropped because a send buffer was full\n");
+        System.out.println("\texit: Stop every hosted server.\n");
+    }
+
+    public static void main(String[] args) {
+        String topologyFile = null;
+        int updateInterval = -1;
+        int maxUpdateInterval = -1;
+        int numLoops = Runtime.getRuntime().availableProcessors();
+
+        // flags come in pairs, -t and -i are required
+        if (args.length % 2 != 0) {
+            printUsage();
+            System.exit(1);
+        }
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "-t": topologyFile = args[i + 1]; break;
+                    case "-i": updateInterval = Integer.parseInt(args[i + 1]); break;
+                    case "-a": maxUpdateInterval = Integer.parseInt(args[i + 1]); break;
+                    case "-l": numLoops = Integer.parseInt(args[i + 1]); break;
+                    default:
+                        System.err.println("Error: Unknown flag " + args[i]);
+                        printUsage();
+                        System.exit(1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number - " + e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        if (topologyFile == null || updateInterval <= 0) {
+            System.err.println("Error: -t and a positive -i are required");
+            printUsage();
+            System.exit(1);
+        }
+        if (maxUpdateInterval == -1) {
+            maxUpdateInterval = updateInterval;
+        }
+        if (maxUpdateInterval < updateInterval || maxUpdateInterval > 0xFFFF) {
+            System.err.println("Error: Invalid maximum interval - must be between the update interval and 65535");
+            printUsage();
+            System.exit(1);
+        }
+        if (numLoops <= 0) {
+            System.err.println("Error: Number of event loops must be positive");
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            routerHost host = new routerHost(topologyFile, updateInterval, maxUpdateInterval, numLoops);
+            host.start();
+        } catch (IOException e) {
+            System.err.println("Error starting host: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: routerHost -t <topology-file-name> -i <routing-update-interval> [-a <max-update-interval>] [-l <event-loops>]");
+        System.out.println("  -t : topology of the whole network, every server with a local IP runs on this host");
+        System.out.println("  -i : time between routing table updates in seconds");
+        System.out.println("  -a : adaptive mode, the interval doubles up to this many seconds while routes are stable");
+        System.out.println("  -l : number of event loop threads shared by the servers (default: number of cores)");
+    }
+}